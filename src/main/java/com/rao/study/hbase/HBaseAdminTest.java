@@ -1,6 +1,11 @@
 package com.rao.study.hbase;
 
 import com.google.common.collect.Lists;
+import com.rao.study.hbase.page.CallRecordPager;
+import com.rao.study.hbase.page.Page;
+import com.rao.study.hbase.stats.TableStats;
+import com.rao.study.hbase.stats.TableStatsCollector;
+import com.rao.study.hbase.warmup.ConnectionWarmup;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
@@ -37,6 +42,31 @@ public class HBaseAdminTest {
         conn.close();
     }
 
+    /**
+     * 创建连接时预热,缓存表的region位置并连接所有HRegionServer
+     */
+    @Test
+    public void testWarmup()throws Exception{
+        Configuration configuration = HBaseConfiguration.create();
+        //设置zookeeper集群地址
+        configuration.set("hbase.zookeeper.quorum","hadoop102,hadoop103,hadoop104");
+
+        //创建连接时预热,report中记录预热的region数和耗时
+        ConnectionWarmup.Report report = new ConnectionWarmup.Report();
+        Connection conn = ConnectionWarmup.createConnection(configuration, true, report,
+                TableName.valueOf("student"), TableName.valueOf("person"));
+        System.out.println(report);
+
+        //第一次Get不再需要查询hbase:meta
+        Table table = conn.getTable(TableName.valueOf("student"));
+        long start = System.currentTimeMillis();
+        table.get(new Get(Bytes.toBytes("10003")));
+        System.out.println("first get="+(System.currentTimeMillis()-start)+"ms");
+
+        table.close();
+        conn.close();
+    }
+
     /**
      * 通过Admin对象创建命名空间
      */
@@ -176,6 +206,28 @@ public class HBaseAdminTest {
         conn.close();
     }
 
+    /**
+     * 并行统计表的行数、字节数以及每个region的行数
+     */
+    @Test
+    public void testTableStats()throws Exception{
+        Configuration configuration = HBaseConfiguration.create();
+        //设置zookeeper集群地址
+        configuration.set("hbase.zookeeper.quorum","hadoop102,hadoop103,hadoop104");
+        Connection conn = ConnectionFactory.createConnection(configuration);
+
+        //只统计行数
+        TableStats count = new TableStatsCollector(conn, TableName.valueOf("student")).setCountOnly(true).collect();
+        System.out.println("rows="+count.getRows());
+
+        //抽样10%估算完整的统计信息,并列出行数倾斜的region
+        TableStats stats = new TableStatsCollector(conn, TableName.valueOf("person")).setSampleRate(0.1).collect();
+        System.out.println(stats);
+
+        //一定要记得关闭连接
+        conn.close();
+    }
+
     /**
      * 修改表
      * @throws Exception
@@ -382,6 +434,34 @@ public class HBaseAdminTest {
         conn.close();
     }
 
+    /**
+     * 分页查询某个手机号最近的通话记录,按时间从新到旧
+     */
+    @Test
+    public void testScanSplitPage()throws Exception{
+        //设置客户端连接配置
+        Configuration configuration = HBaseConfiguration.create();
+        //设置zookeeper集群配置
+        configuration.set("hbase.zookeeper.quorum","hadoop102,hadoop103,hadoop104");
+
+        Connection conn = ConnectionFactory.createConnection(configuration);
+
+        CallRecordPager pager = new CallRecordPager(conn, TableName.valueOf("person"));
+
+        //每页2条,用上一页返回的令牌查询下一页
+        String pageToken = null;
+        do {
+            Page page = pager.latest("13824411467", 2, pageToken);
+            for (Result result : page.getResults()) {
+                System.out.println("rowkey="+Bytes.toString(result.getRow()));
+            }
+            System.out.println("-----");
+            pageToken = page.getNextPageToken();
+        } while (pageToken != null);
+
+        conn.close();
+    }
+
     @Test
     public void test(){
         System.out.println(Math.abs("13824411467_2020-04-22".hashCode()%3));
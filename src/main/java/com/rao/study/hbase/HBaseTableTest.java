@@ -1,5 +1,9 @@
 package com.rao.study.hbase;
 
+import com.rao.study.hbase.async.AsyncTable;
+import com.rao.study.hbase.counter.CounterCoalescer;
+import com.rao.study.hbase.delete.BulkDeleter;
+import com.rao.study.hbase.scan.AdaptiveScanner;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
@@ -13,6 +17,8 @@ import org.apache.hadoop.hbase.filter.SubstringComparator;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import java.util.concurrent.CompletableFuture;
+
 public class HBaseTableTest {
 
     /**
@@ -106,6 +112,34 @@ public class HBaseTableTest {
         connection.close();
     }
 
+    /**
+     * 异步Get操作,调用线程不会阻塞在RPC上
+     * @throws Exception
+     */
+    @Test
+    public void testAsyncGet()throws Exception{
+        //设置客户端连接配置
+        Configuration configuration = HBaseConfiguration.create();
+        //设置zookeeper集群配置
+        configuration.set("hbase.zookeeper.quorum","hadoop102,hadoop103,hadoop104");
+
+        //获取hbase连接
+        Connection connection = ConnectionFactory.createConnection(configuration);
+
+        //16个线程,最多排队1000个请求,每个HRegionServer最多同时4个请求,超时时间3秒
+        AsyncTable table = new AsyncTable(connection, TableName.valueOf("student"), 16, 1000, 4, 3000);
+
+        CompletableFuture<Result> future = table.get(new Get(Bytes.toBytes("10003")));
+        future.thenAccept(result -> System.out.println("rowKey="+Bytes.toString(result.getRow())
+                + ",name="+Bytes.toString(result.getValue(Bytes.toBytes("base_info"),Bytes.toBytes("name")))));
+
+        //等待结果返回后再关闭连接
+        future.join();
+
+        table.close();
+        connection.close();
+    }
+
     /**
      * Scan操作
      */
@@ -150,6 +184,41 @@ public class HBaseTableTest {
         connection.close();
     }
 
+    /**
+     * 自动调整caching、batch、maxResultSize的Scan操作
+     */
+    @Test
+    public void testAdaptiveScanner()throws Exception{
+        //设置客户端连接配置
+        Configuration configuration = HBaseConfiguration.create();
+        //设置zookeeper集群配置
+        configuration.set("hbase.zookeeper.quorum","hadoop102,hadoop103,hadoop104");
+
+        //获取hbase连接
+        Connection connection = ConnectionFactory.createConnection(configuration);
+
+        //获取table对象
+        Table table = connection.getTable(TableName.valueOf("student"));
+
+        Scan scan = new Scan();
+        scan.addFamily(Bytes.toBytes("base_info"));
+        //同时收集底层scanner的RPC次数等指标
+        scan.setScanMetricsEnabled(true);
+
+        //每次RPC期望返回1MB的数据
+        AdaptiveScanner scanner = new AdaptiveScanner(table, scan, 1024 * 1024);
+        for (Result result : scanner) {
+            System.out.println("rowKey="+ Bytes.toString(result.getRow())+",cells="+result.size());
+        }
+        scanner.close();
+
+        //打印选用的参数以及RPC次数
+        System.out.println(scanner.getScanMetrics().getMetricsMap());
+
+        table.close();
+        connection.close();
+    }
+
     /**
      * 扫描指定版本范围的数据
      * @throws Exception
@@ -190,6 +259,34 @@ public class HBaseTableTest {
         connection.close();
     }
 
+    /**
+     * 计数器累加,在客户端合并多次累加后批量写入
+     * @throws Exception
+     */
+    @Test
+    public void testCounter()throws Exception{
+        //设置客户端连接配置
+        Configuration configuration = HBaseConfiguration.create();
+        //设置zookeeper集群配置
+        configuration.set("hbase.zookeeper.quorum","hadoop102,hadoop103,hadoop104");
+
+        //获取hbase连接
+        Connection connection = ConnectionFactory.createConnection(configuration);
+
+        //累加10000次或每隔1秒写入一次,最多10万次累加未写入,每批最多500个Increment
+        CounterCoalescer counter = new CounterCoalescer(connection, TableName.valueOf("student"),
+                10000, 100000, 1000, 500, Durability.USE_DEFAULT, null);
+
+        //10003的访问次数+1000,最终只会发送很少的Increment
+        for (int i = 0; i < 1000; i++) {
+            counter.increment(Bytes.toBytes("10003"),Bytes.toBytes("base_info"),Bytes.toBytes("visits"),1);
+        }
+
+        //关闭时会把剩余的累加值写入hbase
+        counter.close();
+        connection.close();
+    }
+
     @Test
     public void testDelete()throws Exception{
         //设置客户端连接配置
@@ -214,6 +311,35 @@ public class HBaseTableTest {
         connection.close();
     }
 
+    /**
+     * 按rowKey范围批量删除,扫描时只取rowKey,不把整行数据传回客户端
+     * @throws Exception
+     */
+    @Test
+    public void testBulkDelete()throws Exception{
+        //设置客户端连接配置
+        Configuration configuration = HBaseConfiguration.create();
+        //设置zookeeper集群配置
+        configuration.set("hbase.zookeeper.quorum","hadoop102,hadoop103,hadoop104");
+
+        //获取hbase连接
+        Connection connection = ConnectionFactory.createConnection(configuration);
+
+        //删除rowKey在[10001,10003)之间的base_info列蔟
+        BulkDeleter deleter = new BulkDeleter(connection, TableName.valueOf("student"))
+                .setDeleteType(BulkDeleter.DeleteType.FAMILY)
+                .setFamily(Bytes.toBytes("base_info"))
+                .setRowRange(Bytes.toBytes("10001"),Bytes.toBytes("10003"))
+                .setMaxRowsPerSecond(1000);
+
+        //先dryRun统计会删除的行数
+        System.out.println("dryRun count="+deleter.setDryRun(true).execute());
+
+        System.out.println("deleted count="+deleter.setDryRun(false).execute());
+
+        connection.close();
+    }
+
     /**
      * 测试过滤器
      * @throws Exception
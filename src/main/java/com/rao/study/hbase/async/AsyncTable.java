@@ -0,0 +1,263 @@
+package com.rao.study.hbase.async;
+
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于CompletableFuture的异步Table
+ * hbase-client 1.3.6没有异步的Table,这里用有界线程池执行同步的Table操作,调用线程不会阻塞在RPC上
+ *
+ * 每个HRegionServer同时进行中的请求数有上限,在线程池中开始执行时不阻塞地检查,已满时future直接以ServerBusyException失败,
+ * 所以某个HRegionServer变慢时不会占满线程池,发往其他HRegionServer的请求不受影响;
+ * region位置也在线程池中查询,没有缓存时查询hbase:meta不会阻塞调用线程
+ *
+ * 每个操作都有超时时间,超时后future以TimeoutException结束;不会中断正在执行的线程,
+ * 1.3的RPC在写socket时被中断会关闭到该HRegionServer的共享连接,所以由Table的rpc/operation超时让RPC自己结束
+ */
+public class AsyncTable implements Closeable {
+
+    /**
+     * HRegionServer同时进行中的请求数已达到上限
+     */
+    public static class ServerBusyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ServerBusyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 在表上执行的操作
+     */
+    private interface TableCallable<T> {
+        T call(Table table) throws IOException;
+    }
+
+    private final Connection connection;
+    private final TableName tableName;
+    private final RegionLocator locator;
+    private final int maxInFlightPerServer;
+    private final long timeoutMillis;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final ConcurrentMap<ServerName, Semaphore> inFlight = new ConcurrentHashMap<ServerName, Semaphore>();
+
+    /**
+     * @param threads 执行请求的线程数
+     * @param queueSize 等待执行的请求数上限,超过后新的请求直接失败
+     * @param maxInFlightPerServer 每个HRegionServer同时进行中的请求数上限,应小于threads
+     * @param timeoutMillis 每个操作的超时时间(包括排队时间),同时作为Table的rpc和operation超时时间
+     */
+    public AsyncTable(Connection connection, TableName tableName, int threads, int queueSize,
+                      int maxInFlightPerServer, long timeoutMillis) throws IOException {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.locator = connection.getRegionLocator(tableName);
+        this.maxInFlightPerServer = maxInFlightPerServer;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+        this.timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    public CompletableFuture<Result> get(final Get get) {
+        return submit(rows(get), new TableCallable<Result>() {
+            public Result call(Table table) throws IOException {
+                return table.get(get);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> put(final Put put) {
+        return submit(rows(put), new TableCallable<Void>() {
+            public Void call(Table table) throws IOException {
+                table.put(put);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> delete(final Delete delete) {
+        return submit(rows(delete), new TableCallable<Void>() {
+            public Void call(Table table) throws IOException {
+                table.delete(delete);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 批量执行Get/Put/Delete,结果与Table.batch相同
+     */
+    public CompletableFuture<Object[]> batch(final List<? extends Row> actions) {
+        List<byte[]> rows = new ArrayList<byte[]>(actions.size());
+        for (Row action : actions) {
+            rows.add(action.getRow());
+        }
+        return submit(rows, new TableCallable<Object[]>() {
+            public Object[] call(Table table) throws IOException {
+                Object[] results = new Object[actions.size()];
+                try {
+                    table.batch(actions, results);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("batch interrupted", e);
+                }
+                return results;
+            }
+        });
+    }
+
+    /**
+     * 扫描一页数据,最多返回limit行
+     * 下一页可以用最后一行的rowKey加上一个0字节作为startRow继续扫描
+     */
+    public CompletableFuture<List<Result>> scanPage(final Scan scan, final int limit) {
+        return submit(rows(scan.getStartRow()), new TableCallable<List<Result>>() {
+            public List<Result> call(Table table) throws IOException {
+                Scan pageScan = new Scan(scan);
+                pageScan.setCaching(limit);
+                List<Result> results = new ArrayList<Result>(limit);
+                ResultScanner scanner = table.getScanner(pageScan);
+                try {
+                    Result result;
+                    while (results.size() < limit && (result = scanner.next()) != null) {
+                        results.add(result);
+                    }
+                } finally {
+                    scanner.close();
+                }
+                return results;
+            }
+        });
+    }
+
+    private static List<byte[]> rows(Row row) {
+        return rows(row.getRow());
+    }
+
+    private static List<byte[]> rows(byte[] row) {
+        List<byte[]> rows = new ArrayList<byte[]>(1);
+        rows.add(row);
+        return rows;
+    }
+
+    private <T> CompletableFuture<T> submit(final List<byte[]> rows, final TableCallable<T> callable) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        //超时前还没有开始执行的请求不再执行
+        final AtomicBoolean started = new AtomicBoolean();
+        final Future<?> task;
+        try {
+            task = executor.submit(new Runnable() {
+                public void run() {
+                    if (!started.compareAndSet(false, true)) {
+                        return;
+                    }
+                    //不阻塞地获取许可,某个HRegionServer的请求数已满时直接失败
+                    List<Semaphore> acquired;
+                    try {
+                        acquired = acquirePermits(rows);
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    try {
+                        future.complete(execute(callable));
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        release(acquired);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        //超时后只结束future,正在执行的RPC由Table的超时时间结束,不中断线程
+        final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+            public void run() {
+                if (future.completeExceptionally(new TimeoutException(
+                        "operation on " + tableName + " timed out after " + timeoutMillis + " ms"))
+                        && started.compareAndSet(false, true)) {
+                    task.cancel(false);
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, error) -> timeout.cancel(false));
+        return future;
+    }
+
+    /**
+     * 获取涉及的所有HRegionServer的许可,任何一个已满时释放已获取的许可并失败
+     */
+    private List<Semaphore> acquirePermits(List<byte[]> rows) throws IOException {
+        Set<ServerName> servers = new HashSet<ServerName>();
+        for (byte[] row : rows) {
+            servers.add(locator.getRegionLocation(row).getServerName());
+        }
+
+        List<Semaphore> acquired = new ArrayList<Semaphore>(servers.size());
+        for (ServerName server : servers) {
+            Semaphore semaphore = permits(server);
+            if (!semaphore.tryAcquire()) {
+                release(acquired);
+                throw new ServerBusyException("too many in-flight requests to " + server);
+            }
+            acquired.add(semaphore);
+        }
+        return acquired;
+    }
+
+    private static void release(List<Semaphore> acquired) {
+        for (Semaphore semaphore : acquired) {
+            semaphore.release();
+        }
+    }
+
+    private <T> T execute(TableCallable<T> callable) throws IOException {
+        Table table = connection.getTable(tableName);
+        table.setRpcTimeout((int) timeoutMillis);
+        table.setOperationTimeout((int) timeoutMillis);
+        try {
+            return callable.call(table);
+        } finally {
+            table.close();
+        }
+    }
+
+    private Semaphore permits(ServerName server) {
+        Semaphore semaphore = inFlight.get(server);
+        if (semaphore == null) {
+            Semaphore created = new Semaphore(maxInFlightPerServer);
+            semaphore = inFlight.putIfAbsent(server, created);
+            if (semaphore == null) {
+                semaphore = created;
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * 关闭线程池,不会关闭connection
+     */
+    public void close() throws IOException {
+        executor.shutdown();
+        timer.shutdownNow();
+        locator.close();
+    }
+}
@@ -0,0 +1,314 @@
+package com.rao.study.hbase.counter;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数器合并器,在客户端合并同一个计数器的多次累加,再批量以Increment写到hbase
+ * 例如每次通话都给 手机号 的通话次数+1,不需要每次都发一个Increment的RPC,也不需要每次都在服务端加行锁
+ *
+ * 累加值保存在ConcurrentHashMap中,每个计数器是一个CAS更新的long,increment不加锁
+ * 待写入的累加次数达到maxPendingEvents或距上次写入超过flushIntervalMillis时写入hbase
+ * 还没有成功写入hbase的累加次数(包括写入失败等待重试的)超过maxUnflushedEvents时,increment直接抛出RejectedExecutionException,
+ * 所以进程崩溃时最多丢失maxUnflushedEvents次累加
+ * 累加次数用LongAdder统计,increment不会都去更新同一个变量;两个上限大约每CHECK_INTERVAL次累加检查一次,是近似值
+ */
+public class CounterCoalescer implements Closeable {
+
+    /**
+     * 每次写入hbase后的回调
+     */
+    public interface FlushListener {
+        /**
+         * @param increments 本次写入的Increment个数(每行一个)
+         * @param elapsedMillis 写入耗时
+         */
+        void onFlush(int increments, long elapsedMillis);
+
+        /**
+         * 写入失败,失败的累加值已经放回内存中,下次写入时重试
+         */
+        void onError(IOException e, int increments);
+    }
+
+    //计数器已被移除,需要重新从map中获取
+    private static final long RETIRED = Long.MIN_VALUE;
+    //平均每多少次累加检查一次是否需要写入、是否超过上限
+    private static final int CHECK_INTERVAL = 16;
+
+    private final Connection connection;
+    private final TableName tableName;
+    private final long maxPendingEvents;
+    private final long maxUnflushedEvents;
+    private final int batchSize;
+    private final Durability durability;
+    private final FlushListener listener;
+
+    private final ConcurrentMap<CounterKey, AtomicLong> counters = new ConcurrentHashMap<CounterKey, AtomicLong>();
+    //累加的总次数
+    private final LongAdder events = new LongAdder();
+    //上次取出累加值时的总次数,用于触发写入
+    private volatile long drainedEvents;
+    //已经成功写入hbase的累加次数,与总次数的差就是还没有成功写入的次数
+    private volatile long flushedEvents;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param maxPendingEvents 累加次数达到该值时触发写入
+     * @param maxUnflushedEvents 还没有成功写入的累加次数上限,即进程崩溃时最多丢失的累加次数
+     * @param flushIntervalMillis 定时写入的间隔
+     * @param batchSize 每次batch发送的Increment个数
+     * @param durability Increment写WAL的方式,如Durability.SKIP_WAL时更快但RegionServer宕机会丢数据
+     * @param listener 写入回调,可以为null
+     */
+    public CounterCoalescer(Connection connection, TableName tableName, long maxPendingEvents, long maxUnflushedEvents,
+                            long flushIntervalMillis, int batchSize, Durability durability, FlushListener listener) {
+        if (maxUnflushedEvents < maxPendingEvents) {
+            throw new IllegalArgumentException("maxUnflushedEvents must not be less than maxPendingEvents");
+        }
+        this.connection = connection;
+        this.tableName = tableName;
+        this.maxPendingEvents = maxPendingEvents;
+        this.maxUnflushedEvents = maxUnflushedEvents;
+        this.batchSize = batchSize;
+        this.durability = durability;
+        this.listener = listener;
+        this.flusher = Executors.newSingleThreadScheduledExecutor();
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flushQuietly();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 累加计数器,只修改内存中的值
+     * @throws RejectedExecutionException 还没有成功写入的累加次数已达到maxUnflushedEvents,例如hbase一直写入失败
+     */
+    public void increment(byte[] row, byte[] family, byte[] qualifier, long delta) {
+        if (closed) {
+            throw new IllegalStateException("counter coalescer is closed");
+        }
+        //抽样检查,避免每次累加都读取所有线程的计数
+        if (ThreadLocalRandom.current().nextInt(CHECK_INTERVAL) == 0) {
+            long total = events.sum();
+            if (total - flushedEvents >= maxUnflushedEvents) {
+                throw new RejectedExecutionException("too many unflushed counter events for " + tableName);
+            }
+            if (total - drainedEvents >= maxPendingEvents && flushRequested.compareAndSet(false, true)) {
+                flusher.execute(new Runnable() {
+                    public void run() {
+                        flushQuietly();
+                    }
+                });
+            }
+        }
+        add(new CounterKey(row, family, qualifier), delta);
+        //先放入map再计数,写入时记录的次数不会包含还没有放入map的累加
+        events.increment();
+    }
+
+    private void add(CounterKey key, long delta) {
+        while (true) {
+            AtomicLong counter = counters.get(key);
+            if (counter == null) {
+                AtomicLong created = new AtomicLong(delta);
+                counter = counters.putIfAbsent(key, created);
+                if (counter == null) {
+                    return;
+                }
+            }
+            long current = counter.get();
+            while (current != RETIRED) {
+                if (counter.compareAndSet(current, current + delta)) {
+                    return;
+                }
+                current = counter.get();
+            }
+            //计数器刚被移除,重新获取
+        }
+    }
+
+    /**
+     * 将内存中累加的值写入hbase,与定时写入在同一个线程中执行
+     */
+    public void flush() throws IOException {
+        try {
+            flusher.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    doFlush();
+                    return null;
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("flush interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            doFlush();
+        } catch (IOException e) {
+            //已经通知listener,等待下次写入重试
+        }
+    }
+
+    private void doFlush() throws IOException {
+        //只在flusher线程中执行
+        flushRequested.set(false);
+        //在取出累加值之前记录,这些累加都已经在map中,会在本次一起写入
+        long flushingEvents = events.sum();
+        drainedEvents = flushingEvents;
+
+        //取出每个计数器的累加值并清零,没有新累加的计数器从map中移除
+        Map<CounterKey, Long> deltas = new HashMap<CounterKey, Long>();
+        Iterator<Map.Entry<CounterKey, AtomicLong>> iterator = counters.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<CounterKey, AtomicLong> entry = iterator.next();
+            long delta = entry.getValue().getAndSet(0);
+            if (delta != 0) {
+                deltas.put(entry.getKey(), delta);
+            } else if (entry.getValue().compareAndSet(0, RETIRED)) {
+                iterator.remove();
+            }
+        }
+        if (deltas.isEmpty()) {
+            flushedEvents = flushingEvents;
+            return;
+        }
+
+        //同一行的多个列合并为一个Increment
+        Map<CounterKey, Integer> rowIndexes = new HashMap<CounterKey, Integer>();
+        List<Increment> increments = new ArrayList<Increment>();
+        for (Map.Entry<CounterKey, Long> entry : deltas.entrySet()) {
+            CounterKey rowKey = entry.getKey().rowKey();
+            Integer index = rowIndexes.get(rowKey);
+            if (index == null) {
+                Increment increment = new Increment(entry.getKey().row);
+                increment.setDurability(durability);
+                index = increments.size();
+                increments.add(increment);
+                rowIndexes.put(rowKey, index);
+            }
+            increments.get(index).addColumn(entry.getKey().family, entry.getKey().qualifier, entry.getValue());
+        }
+
+        long start = System.currentTimeMillis();
+        //每个Increment的结果,成功时为Result
+        Object[] results = new Object[increments.size()];
+        Table table = connection.getTable(tableName);
+        try {
+            for (int from = 0; from < increments.size(); from += batchSize) {
+                int to = Math.min(increments.size(), from + batchSize);
+                Object[] batchResults = new Object[to - from];
+                try {
+                    table.batch(increments.subList(from, to), batchResults);
+                } finally {
+                    System.arraycopy(batchResults, 0, results, from, batchResults.length);
+                }
+            }
+        } catch (IOException e) {
+            int failed = restoreFailed(deltas, rowIndexes, results);
+            if (listener != null) {
+                listener.onError(e, failed);
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            restoreFailed(deltas, rowIndexes, results);
+            Thread.currentThread().interrupt();
+            throw new IOException("flush interrupted", e);
+        } finally {
+            table.close();
+        }
+        //全部写入成功,之前失败放回的累加值也已经在本次写入
+        flushedEvents = flushingEvents;
+        if (listener != null) {
+            listener.onFlush(increments.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 没有成功的Increment把累加值放回去,下次重试;已经成功的不能放回,否则会重复累加
+     * @return 失败的Increment个数
+     */
+    private int restoreFailed(Map<CounterKey, Long> deltas, Map<CounterKey, Integer> rowIndexes, Object[] results) {
+        for (Map.Entry<CounterKey, Long> entry : deltas.entrySet()) {
+            if (!(results[rowIndexes.get(entry.getKey().rowKey())] instanceof Result)) {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+        int failed = 0;
+        for (Object result : results) {
+            if (!(result instanceof Result)) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 关闭前会把内存中剩余的累加值写入hbase,不会关闭connection
+     */
+    public void close() throws IOException {
+        closed = true;
+        try {
+            flush();
+        } finally {
+            flusher.shutdown();
+        }
+    }
+
+    private static final class CounterKey {
+        private final byte[] row;
+        private final byte[] family;
+        private final byte[] qualifier;
+        private final int hash;
+
+        CounterKey(byte[] row, byte[] family, byte[] qualifier) {
+            this.row = row;
+            this.family = family;
+            this.qualifier = qualifier;
+            this.hash = 31 * (31 * Bytes.hashCode(row) + (family == null ? 0 : Bytes.hashCode(family)))
+                    + (qualifier == null ? 0 : Bytes.hashCode(qualifier));
+        }
+
+        /**
+         * 只包含rowKey的key,用于按行合并
+         */
+        CounterKey rowKey() {
+            return new CounterKey(row, null, null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CounterKey)) {
+                return false;
+            }
+            CounterKey other = (CounterKey) obj;
+            return Bytes.equals(row, other.row) && Bytes.equals(family, other.family)
+                    && Bytes.equals(qualifier, other.qualifier);
+        }
+    }
+}
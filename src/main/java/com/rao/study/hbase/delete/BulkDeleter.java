@@ -0,0 +1,328 @@
+package com.rao.study.hbase.delete;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 按rowKey范围批量删除数据
+ * 按region切分扫描范围,每个region一个线程,扫描时只取key(FirstKeyOnlyFilter/KeyOnlyFilter),不把整行数据传回客户端,
+ * 然后将Delete按批次发送到对应的HRegionServer
+ *
+ * 支持四种删除方式:
+ * ROW 删除整行, FAMILY 删除列蔟, COLUMN 删除某列的所有版本, VERSION 删除某列在时间范围内的版本
+ * 设置了时间范围的下界时,所有方式都会扫描出范围内的每个版本并逐个删除
+ */
+public class BulkDeleter {
+
+    public enum DeleteType {
+        ROW, FAMILY, COLUMN, VERSION
+    }
+
+    //限速时一次scanner RPC返回的行数最多够删除这么多秒,两次RPC的间隔要远小于scanner的租约时间(默认60秒)
+    private static final long THROTTLED_FETCH_SECONDS = 10;
+
+    private final Connection connection;
+    private final TableName tableName;
+
+    private DeleteType deleteType = DeleteType.ROW;
+    private byte[] family;
+    private byte[] qualifier;
+    private byte[] startRow = HConstants.EMPTY_START_ROW;
+    private byte[] stopRow = HConstants.EMPTY_END_ROW;
+    private long minTimestamp = 0L;
+    private long maxTimestamp = Long.MAX_VALUE;
+    private int batchSize = 1000;
+    private int threads = 4;
+    //每秒最多删除的行数,小于等于0表示不限速
+    private long maxRowsPerSecond = 0;
+    //只统计会删除的行数,不真正删除
+    private boolean dryRun = false;
+
+    public BulkDeleter(Connection connection, TableName tableName) {
+        this.connection = connection;
+        this.tableName = tableName;
+    }
+
+    public BulkDeleter setDeleteType(DeleteType deleteType) {
+        this.deleteType = deleteType;
+        return this;
+    }
+
+    public BulkDeleter setFamily(byte[] family) {
+        this.family = family;
+        return this;
+    }
+
+    public BulkDeleter setColumn(byte[] family, byte[] qualifier) {
+        this.family = family;
+        this.qualifier = qualifier;
+        return this;
+    }
+
+    /**
+     * 删除范围[startRow,stopRow)
+     */
+    public BulkDeleter setRowRange(byte[] startRow, byte[] stopRow) {
+        this.startRow = startRow;
+        this.stopRow = stopRow;
+        return this;
+    }
+
+    /**
+     * 只删除时间戳在[minTimestamp,maxTimestamp)之间的数据
+     */
+    public BulkDeleter setTimeRange(long minTimestamp, long maxTimestamp) {
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        return this;
+    }
+
+    public BulkDeleter setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public BulkDeleter setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public BulkDeleter setMaxRowsPerSecond(long maxRowsPerSecond) {
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        return this;
+    }
+
+    public BulkDeleter setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+
+    /**
+     * 执行删除
+     * @return 删除(dryRun时为匹配到)的行数
+     */
+    public long execute() throws IOException {
+        checkArgs();
+
+        List<Pair<byte[], byte[]>> ranges = splitByRegion();
+        final Throttle throttle = new Throttle(maxRowsPerSecond);
+
+        long total = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, ranges.size())));
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (final Pair<byte[], byte[]> range : ranges) {
+                futures.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return deleteRange(range.getFirst(), range.getSecond(), throttle);
+                    }
+                }));
+            }
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("bulk delete interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("bulk delete failed on " + tableName, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return total;
+    }
+
+    private void checkArgs() {
+        if (deleteType != DeleteType.ROW && family == null) {
+            throw new IllegalArgumentException(deleteType + " delete requires a family");
+        }
+        if ((deleteType == DeleteType.COLUMN || deleteType == DeleteType.VERSION) && qualifier == null) {
+            throw new IllegalArgumentException(deleteType + " delete requires a qualifier");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+    }
+
+    /**
+     * 将[startRow,stopRow)按region边界切分,每段只落在一个region中
+     */
+    private List<Pair<byte[], byte[]>> splitByRegion() throws IOException {
+        List<Pair<byte[], byte[]>> ranges = new ArrayList<Pair<byte[], byte[]>>();
+        RegionLocator locator = connection.getRegionLocator(tableName);
+        try {
+            Pair<byte[][], byte[][]> keys = locator.getStartEndKeys();
+            for (int i = 0; i < keys.getFirst().length; i++) {
+                byte[] regionStart = keys.getFirst()[i];
+                byte[] regionEnd = keys.getSecond()[i];
+
+                byte[] start = Bytes.compareTo(regionStart, startRow) > 0 ? regionStart : startRow;
+                byte[] stop;
+                if (regionEnd.length == 0) {
+                    stop = stopRow;
+                } else if (stopRow.length == 0) {
+                    stop = regionEnd;
+                } else {
+                    stop = Bytes.compareTo(regionEnd, stopRow) < 0 ? regionEnd : stopRow;
+                }
+                //跳过与删除范围没有交集的region
+                if (stop.length == 0 || Bytes.compareTo(start, stop) < 0) {
+                    ranges.add(new Pair<byte[], byte[]>(start, stop));
+                }
+            }
+        } finally {
+            locator.close();
+        }
+        return ranges;
+    }
+
+    /**
+     * 扫描一个region内的范围并删除
+     */
+    private long deleteRange(byte[] start, byte[] stop, Throttle throttle) throws IOException, InterruptedException {
+        long count = 0;
+        Table table = connection.getTable(tableName);
+        ResultScanner scanner = table.getScanner(buildScan(start, stop));
+        try {
+            List<Delete> deletes = new ArrayList<Delete>(batchSize);
+            for (Result result : scanner) {
+                Delete delete = buildDelete(result);
+                if (delete == null) {
+                    continue;
+                }
+                count++;
+                if (dryRun) {
+                    continue;
+                }
+                throttle.acquire();
+                deletes.add(delete);
+                if (deletes.size() >= batchSize) {
+                    table.delete(deletes);
+                    deletes = new ArrayList<Delete>(batchSize);
+                }
+            }
+            if (!deletes.isEmpty()) {
+                table.delete(deletes);
+            }
+        } finally {
+            scanner.close();
+            table.close();
+        }
+        return count;
+    }
+
+    private Scan buildScan(byte[] start, byte[] stop) throws IOException {
+        Scan scan = new Scan(start, stop);
+        scan.setCaching(batchSize);
+        if (maxRowsPerSecond > 0 && !dryRun) {
+            //限速是所有线程共用的,每个线程每秒大约只能删除maxRowsPerSecond/threads行
+            long rowsPerFetch = maxRowsPerSecond * THROTTLED_FETCH_SECONDS / Math.max(1, threads);
+            scan.setCaching((int) Math.max(1, Math.min(batchSize, rowsPerFetch)));
+        }
+        //删除用的扫描不需要进入BlockCache
+        scan.setCacheBlocks(false);
+        scan.setTimeRange(minTimestamp, maxTimestamp);
+
+        if (deleteType == DeleteType.VERSION || minTimestamp > 0) {
+            //需要拿到每个版本的时间戳,逐个版本删除
+            if (deleteType == DeleteType.FAMILY) {
+                scan.addFamily(family);
+            } else if (deleteType != DeleteType.ROW) {
+                scan.addColumn(family, qualifier);
+            }
+            scan.setMaxVersions();
+            scan.setFilter(new KeyOnlyFilter());
+            return scan;
+        }
+
+        switch (deleteType) {
+            case ROW:
+                //每行只返回第一个cell的key即可拿到rowKey
+                scan.setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+                break;
+            case FAMILY:
+                scan.addFamily(family);
+                scan.setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+                break;
+            case COLUMN:
+                scan.addColumn(family, qualifier);
+                scan.setFilter(new KeyOnlyFilter());
+                break;
+        }
+        return scan;
+    }
+
+    private Delete buildDelete(Result result) {
+        if (result.isEmpty()) {
+            return null;
+        }
+        Delete delete = new Delete(result.getRow());
+        if (deleteType == DeleteType.VERSION || minTimestamp > 0) {
+            //Delete的时间戳只能指定上界,有下界时只能按扫描到的版本逐个删除,避免删掉minTimestamp之前的数据
+            for (Cell cell : result.rawCells()) {
+                delete.addColumn(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell), cell.getTimestamp());
+            }
+            return delete;
+        }
+
+        //maxTimestamp是开区间,Delete的时间戳是闭区间
+        long deleteTs = maxTimestamp == Long.MAX_VALUE ? HConstants.LATEST_TIMESTAMP : maxTimestamp - 1;
+        switch (deleteType) {
+            case ROW:
+                if (maxTimestamp != Long.MAX_VALUE) {
+                    delete = new Delete(result.getRow(), deleteTs);
+                }
+                break;
+            case FAMILY:
+                delete.addFamily(family, deleteTs);
+                break;
+            case COLUMN:
+                delete.addColumns(family, qualifier, deleteTs);
+                break;
+        }
+        return delete;
+    }
+
+    /**
+     * 简单的限速器,所有线程共享,按每秒行数发放许可
+     */
+    private static class Throttle {
+        private final long intervalNanos;
+        private long nextFreeNanos = System.nanoTime();
+
+        Throttle(long permitsPerSecond) {
+            this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+        }
+
+        void acquire() throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (nextFreeNanos < now) {
+                    nextFreeNanos = now;
+                }
+                waitNanos = nextFreeNanos - now;
+                nextFreeNanos += intervalNanos;
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+}
@@ -1,20 +1,55 @@
 package com.rao.study.hbase.mr1;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HRegionPartitioner;
+import org.apache.hadoop.hbase.mapreduce.PutCombiner;
 import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
 public class HBaseMRDriver implements Tool {
 
+    //保存上次同步时间(高水位)的HDFS文件
+    public static final String HIGH_WATER_MARK_PATH = "sync.hwm.path";
+    //增量同步从上次同步时间之前多久开始,时间戳由HRegionServer分配,时钟可能比driver慢,
+    //或者在校验之后才写入,重叠的部分重复同步不影响结果(保留原来的时间戳)
+    public static final String OVERLAP_MILLIS = "sync.overlap.millis";
+
+    private static final TableName SOURCE = TableName.valueOf("student");
+    private static final TableName TARGET = TableName.valueOf("student2");
+
     private Configuration configuration;
 
+    /**
+     * @param args 不传参数时全量同步; 传incremental时只同步上次同步之后变化的数据
+     */
     public int run(String[] args) throws Exception {
+        boolean incremental = args.length > 0 && "incremental".equals(args[0]);
+        //本次同步[lastRun,now)之间的数据
+        long now = System.currentTimeMillis();
+        long lastRun = 0;
+        if (incremental) {
+            lastRun = Math.max(0, readHighWaterMark() - configuration.getLong(OVERLAP_MILLIS, 10 * 60 * 1000L));
+        }
 
         Job job = Job.getInstance(configuration);
         //设置Jar
@@ -22,15 +57,86 @@ public class HBaseMRDriver implements Tool {
 
         // 设置Mapper类,参数类型,Mapper读取HBase的表
         Scan scan = new Scan();//进行全表扫描
-        TableMapReduceUtil.initTableMapperJob(TableName.valueOf("student"),scan,MyMapper.class, ImmutableBytesWritable.class, Put.class,job);
+        //MR全表扫描时一次RPC多返回一些行,并限制每次返回的大小,避免宽行撑爆map的内存
+        scan.setCaching(500);
+        scan.setMaxResultSize(2 * 1024 * 1024);
+        //全表扫描的数据不需要进入BlockCache
+        scan.setCacheBlocks(false);
+        scan.setTimeRange(lastRun, now);
+
+        if (incremental) {
+            //raw scan可以读到所有版本以及删除标记,一起同步到目标表
+            scan.setRaw(true);
+            scan.setMaxVersions();
+            TableMapReduceUtil.initTableMapperJob(SOURCE,scan,IncrementalSyncMapper.class, ImmutableBytesWritable.class, Mutation.class,job);
 
-        // 设置Reducer
-        TableMapReduceUtil.initTableReducerJob("student2",MyReducer.class,job);
+            //只有map的job,与CopyTable一样由TableOutputFormat直接写出Put和Delete
+            //有reducer时map输出要经过MapOutputBuffer,只能是声明的一种类型,Put和Delete混在一起会报类型不匹配
+            TableMapReduceUtil.initTableReducerJob(TARGET.getNameAsString(),null,job);
+            job.setNumReduceTasks(0);
+        } else {
+            TableMapReduceUtil.initTableMapperJob(SOURCE,scan,MyMapper.class, ImmutableBytesWritable.class, Put.class,job);
+
+            //在map端先合并同一rowKey的多个Put
+            job.setCombinerClass(PutCombiner.class);
+
+            // 设置Reducer,按目标表的region划分reducer,每个reducer只写一个region
+            TableMapReduceUtil.initTableReducerJob(TARGET.getNameAsString(),MyReducer.class,job,HRegionPartitioner.class);
+            TableMapReduceUtil.setNumReduceTasks(TARGET.getNameAsString(),job);
+        }
 
         //提交job
         boolean result = job.waitForCompletion(true);
+        if (!result) {
+            return 1;
+        }
 
-        return result?0:1;
+        //增量同步后校验本次有变化的行,一致后才记录本次同步时间,否则下次从lastRun重新同步
+        //全量同步不同步删除,两个表可能本来就不一致,不做校验
+        if (incremental) {
+            Connection connection = ConnectionFactory.createConnection(HBaseConfiguration.create(configuration));
+            try {
+                List<byte[]> mismatched = SyncVerifier.verify(connection, SOURCE, TARGET, lastRun, now);
+                if (!mismatched.isEmpty()) {
+                    System.out.println(mismatched.size() + " rows mismatch, first=" + Bytes.toStringBinary(mismatched.get(0)));
+                    return 1;
+                }
+            } finally {
+                connection.close();
+            }
+        }
+        writeHighWaterMark(now);
+        return 0;
+    }
+
+    /**
+     * 读取上次同步的时间,没有同步过时返回0
+     */
+    private long readHighWaterMark() throws IOException {
+        Path path = new Path(configuration.get(HIGH_WATER_MARK_PATH, "/hbase-sync/student_student2"));
+        FileSystem fs = path.getFileSystem(configuration);
+        if (!fs.exists(path)) {
+            return 0;
+        }
+        FSDataInputStream in = fs.open(path);
+        try {
+            String line = new BufferedReader(new InputStreamReader(in, "UTF-8")).readLine();
+            //空文件视为没有同步过
+            return line == null || line.trim().isEmpty() ? 0 : Long.parseLong(line.trim());
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeHighWaterMark(long timestamp) throws IOException {
+        Path path = new Path(configuration.get(HIGH_WATER_MARK_PATH, "/hbase-sync/student_student2"));
+        FileSystem fs = path.getFileSystem(configuration);
+        FSDataOutputStream out = fs.create(path, true);
+        try {
+            out.write(Bytes.toBytes(String.valueOf(timestamp)));
+        } finally {
+            out.close();
+        }
     }
 
     public void setConf(Configuration conf) {
@@ -0,0 +1,55 @@
+package com.rao.study.hbase.mr1;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+
+/**
+ * 增量同步的Mapper,读取的是raw scan的结果,包含数据的所有版本以及删除标记
+ * 数据的每个版本转为Put,删除标记转为Delete,时间戳保持不变,写到目标表后与源表的结果一致
+ * 与MyMapper一样只同步base_info列蔟下的name和sex列
+ */
+public class IncrementalSyncMapper extends TableMapper<ImmutableBytesWritable, Mutation> {
+
+    @Override
+    protected void map(ImmutableBytesWritable key, Result value, Context context) throws IOException, InterruptedException {
+        Put put = new Put(key.get());
+        Delete delete = new Delete(key.get());
+
+        for (Cell cell : value.rawCells()) {
+            if (!"base_info".equals(Bytes.toString(CellUtil.cloneFamily(cell)))) {
+                continue;
+            }
+            //删除整个列蔟的标记没有列名,需要同步
+            if (CellUtil.isDeleteFamily(cell) || CellUtil.isDeleteFamilyVersion(cell)) {
+                delete.addDeleteMarker(cell);
+                continue;
+            }
+            String cn = Bytes.toString(CellUtil.cloneQualifier(cell));
+            if (!"name".equals(cn) && !"sex".equals(cn)) {
+                continue;
+            }
+            if (CellUtil.isDelete(cell)) {
+                delete.addDeleteMarker(cell);
+            } else {
+                put.add(cell);
+            }
+        }
+
+        //删除标记和数据都带有各自的时间戳,两者写入的先后顺序不影响结果
+        if (!delete.isEmpty()) {
+            context.write(key, delete);
+        }
+        if (!put.isEmpty()) {
+            context.write(key, put);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.rao.study.hbase.mr1;
 
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.mapreduce.TableReducer;
 import org.apache.hadoop.io.NullWritable;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * 在Reducer端,通过TableReducer将Put对象写到hbase中
@@ -14,9 +16,21 @@ import java.io.IOException;
 public class MyReducer extends TableReducer<ImmutableBytesWritable, Put, NullWritable> {
     @Override
     protected void reduce(ImmutableBytesWritable key, Iterable<Put> values, Context context) throws IOException, InterruptedException {
-        //遍历将put写到hbase中
+        //将同一个rowKey的多个Put合并为一个,只写一次
+        Put merged = null;
         for (Put value : values) {
-            context.write(NullWritable.get(),value);
+            if (merged == null) {
+                merged = value;
+                continue;
+            }
+            for (List<Cell> cells : value.getFamilyCellMap().values()) {
+                for (Cell cell : cells) {
+                    merged.add(cell);
+                }
+            }
+        }
+        if (merged != null && !merged.isEmpty()) {
+            context.write(NullWritable.get(),merged);
         }
     }
 }
@@ -0,0 +1,130 @@
+package com.rao.study.hbase.mr1;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 校验增量同步的结果,只检查[minTimestamp,maxTimestamp)之间有变化的行,不扫描整个表
+ * 先用raw scan找出源表在这段时间内有数据或删除标记的行,再分批Get两个表中这些行,比较每行的校验和
+ * 只比较同步的列(base_info:name,sex)在maxTimestamp之前的最新版本,所以与两个表保留的版本数无关
+ *
+ * Get的时间范围不限制删除标记,maxTimestamp之后源表的删除在本次校验时就会生效,而目标表还没有同步,
+ * 所以有maxTimestamp之后删除标记的行跳过,由下次同步后校验
+ */
+public class SyncVerifier {
+
+    private static final byte[] FAMILY = Bytes.toBytes("base_info");
+    private static final byte[][] QUALIFIERS = {Bytes.toBytes("name"), Bytes.toBytes("sex")};
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * @return 校验和不一致的rowKey
+     */
+    public static List<byte[]> verify(Connection connection, TableName source, TableName target,
+                                      long minTimestamp, long maxTimestamp) throws IOException {
+        List<byte[]> mismatched = new ArrayList<byte[]>();
+        Table sourceTable = connection.getTable(source);
+        Table targetTable = connection.getTable(target);
+        try {
+            //有变化的行,只需要key,同时读出maxTimestamp之后的删除标记
+            Scan scan = new Scan();
+            scan.addFamily(FAMILY);
+            scan.setRaw(true);
+            scan.setMaxVersions();
+            scan.setTimeRange(minTimestamp, Long.MAX_VALUE);
+            scan.setFilter(new KeyOnlyFilter());
+            scan.setCaching(1000);
+            scan.setCacheBlocks(false);
+
+            List<byte[]> rows = new ArrayList<byte[]>(BATCH_SIZE);
+            ResultScanner scanner = sourceTable.getScanner(scan);
+            try {
+                for (Result result : scanner) {
+                    if (!isComparable(result, maxTimestamp)) {
+                        continue;
+                    }
+                    rows.add(result.getRow());
+                    if (rows.size() >= BATCH_SIZE) {
+                        compare(sourceTable, targetTable, rows, maxTimestamp, mismatched);
+                        rows.clear();
+                    }
+                }
+            } finally {
+                scanner.close();
+            }
+            compare(sourceTable, targetTable, rows, maxTimestamp, mismatched);
+        } finally {
+            sourceTable.close();
+            targetTable.close();
+        }
+        return mismatched;
+    }
+
+    /**
+     * @return 行在maxTimestamp之前有变化,并且没有maxTimestamp之后的删除标记
+     */
+    private static boolean isComparable(Result result, long maxTimestamp) {
+        boolean changed = false;
+        for (Cell cell : result.rawCells()) {
+            if (cell.getTimestamp() < maxTimestamp) {
+                changed = true;
+            } else if (CellUtil.isDelete(cell)) {
+                return false;
+            }
+        }
+        return changed;
+    }
+
+    private static void compare(Table sourceTable, Table targetTable, List<byte[]> rows, long maxTimestamp,
+                                List<byte[]> mismatched) throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Get> gets = new ArrayList<Get>(rows.size());
+        for (byte[] row : rows) {
+            Get get = new Get(row);
+            for (byte[] qualifier : QUALIFIERS) {
+                get.addColumn(FAMILY, qualifier);
+            }
+            get.setTimeRange(0, maxTimestamp);
+            get.setMaxVersions(1);
+            gets.add(get);
+        }
+        Result[] sourceResults = sourceTable.get(gets);
+        Result[] targetResults = targetTable.get(gets);
+        for (int i = 0; i < rows.size(); i++) {
+            String sourceChecksum = checksum(sourceResults[i]);
+            String targetChecksum = checksum(targetResults[i]);
+            if (!sourceChecksum.equals(targetChecksum)) {
+                mismatched.add(rows.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return cell个数:CRC32
+     */
+    private static String checksum(Result result) {
+        CRC32 crc = new CRC32();
+        long cells = 0;
+        if (result.isEmpty()) {
+            return cells + ":" + Long.toHexString(crc.getValue());
+        }
+        for (Cell cell : result.rawCells()) {
+            crc.update(CellUtil.cloneQualifier(cell));
+            crc.update(Bytes.toBytes(cell.getTimestamp()));
+            crc.update(CellUtil.cloneValue(cell));
+            cells++;
+        }
+        return cells + ":" + Long.toHexString(crc.getValue());
+    }
+}
@@ -5,6 +5,8 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HRegionPartitioner;
+import org.apache.hadoop.hbase.mapreduce.PutCombiner;
 import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
@@ -26,8 +28,12 @@ public class Driver implements Tool {
         job.setMapOutputKeyClass(ImmutableBytesWritable.class);
         job.setMapOutputValueClass(Put.class);
 
-        //设置reducer
-        TableMapReduceUtil.initTableReducerJob(args[0],MyReducer.class,job);
+        //在map端先合并同一rowKey的多个Put
+        job.setCombinerClass(PutCombiner.class);
+
+        //设置reducer,按目标表的region划分reducer,每个reducer只写一个region
+        TableMapReduceUtil.initTableReducerJob(args[0],MyReducer.class,job,HRegionPartitioner.class);
+        TableMapReduceUtil.setNumReduceTasks(args[0],job);
 
         //执行job
         boolean result = job.waitForCompletion(true);
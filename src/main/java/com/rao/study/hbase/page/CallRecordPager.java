@@ -0,0 +1,169 @@
+package com.rao.study.hbase.page;
+
+import com.rao.study.hbase.util.RowKeyUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分页查询某个手机号最近的通话记录,按时间从新到旧返回
+ *
+ * 同一个手机号的数据按日期hash分散在多个分区中,所以每个分区都用反向扫描(reversed scan)从最新的数据开始读,
+ * 每个分区最多只读pageSize行,再按时间归并出一页,所以第一页的耗时与手机号的历史数据量无关
+ *
+ * 翻页令牌中记录了每个分区上一页最后读到的rowKey,下一页从该位置之后继续读
+ */
+public class CallRecordPager {
+
+    //令牌中表示该分区已经读完
+    private static final String EXHAUSTED = "-";
+    private static final String TOKEN_SEPARATOR = ".";
+
+    private final Connection connection;
+    private final TableName tableName;
+
+    public CallRecordPager(Connection connection, TableName tableName) {
+        this.connection = connection;
+        this.tableName = tableName;
+    }
+
+    /**
+     * 查询一页数据
+     * @param phone 手机号
+     * @param pageSize 每页条数
+     * @param pageToken 上一页返回的令牌,查询第一页时传null
+     */
+    public Page latest(String phone, int pageSize, String pageToken) throws IOException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        String[] cursors = decodeToken(pageToken);
+
+        //每个分区读出的候选数据
+        List<List<Result>> candidates = new ArrayList<List<Result>>(RowKeyUtil.SPLIT_COUNT);
+        Table table = connection.getTable(tableName);
+        try {
+            for (int split = 0; split < RowKeyUtil.SPLIT_COUNT; split++) {
+                if (EXHAUSTED.equals(cursors[split])) {
+                    candidates.add(new ArrayList<Result>());
+                } else {
+                    candidates.add(scanSplit(table, split, phone, cursors[split], pageSize));
+                }
+            }
+        } finally {
+            table.close();
+        }
+
+        //按时间从新到旧归并各分区的数据
+        List<Result> results = new ArrayList<Result>(pageSize);
+        int[] positions = new int[RowKeyUtil.SPLIT_COUNT];
+        while (results.size() < pageSize) {
+            int newest = -1;
+            for (int split = 0; split < RowKeyUtil.SPLIT_COUNT; split++) {
+                if (positions[split] >= candidates.get(split).size()) {
+                    continue;
+                }
+                if (newest < 0 || compareTime(candidates.get(split).get(positions[split]),
+                        candidates.get(newest).get(positions[newest])) > 0) {
+                    newest = split;
+                }
+            }
+            if (newest < 0) {
+                break;
+            }
+            Result result = candidates.get(newest).get(positions[newest]++);
+            results.add(result);
+            cursors[newest] = Bytes.toHex(result.getRow());
+        }
+
+        //读到的行数不足pageSize且已经全部返回的分区,说明该分区没有更多数据了
+        boolean hasNext = false;
+        for (int split = 0; split < RowKeyUtil.SPLIT_COUNT; split++) {
+            if (EXHAUSTED.equals(cursors[split])) {
+                continue;
+            }
+            List<Result> splitResults = candidates.get(split);
+            if (splitResults.size() < pageSize && positions[split] == splitResults.size()) {
+                cursors[split] = EXHAUSTED;
+            } else {
+                hasNext = true;
+            }
+        }
+        return new Page(results, hasNext ? encodeToken(cursors) : null);
+    }
+
+    /**
+     * 反向扫描一个分区,从cursor之后(不包含cursor)开始,最多读pageSize行
+     */
+    private List<Result> scanSplit(Table table, int split, String phone, String cursor, int pageSize) throws IOException {
+        byte[] prefix = Bytes.toBytes(RowKeyUtil.getSplitKey(split) + phone + "_");
+        byte[] startRow = cursor == null || cursor.isEmpty()
+                ? Bytes.add(prefix, new byte[]{(byte) 0xFF})
+                : Bytes.fromHex(cursor);
+        boolean skipFirst = cursor != null && !cursor.isEmpty();
+        int limit = skipFirst ? pageSize + 1 : pageSize;
+
+        //反向扫描时startRow是较大的rowKey
+        Scan scan = new Scan(startRow, prefix);
+        scan.setReversed(true);
+        scan.setFilter(new PageFilter(limit));
+        scan.setCaching(limit);
+
+        List<Result> results = new ArrayList<Result>(limit);
+        ResultScanner scanner = table.getScanner(scan);
+        try {
+            Result result;
+            while (results.size() < pageSize && (result = scanner.next()) != null) {
+                //startRow是包含的,跳过上一页已经返回过的那一行
+                if (skipFirst && Bytes.equals(result.getRow(), startRow)) {
+                    continue;
+                }
+                results.add(result);
+            }
+        } finally {
+            scanner.close();
+        }
+        return results;
+    }
+
+    /**
+     * 比较两行的时间,分区号之后是 手机号_时间,手机号相同,所以直接比较分区号之后的部分
+     */
+    private static int compareTime(Result left, Result right) {
+        byte[] l = left.getRow();
+        byte[] r = right.getRow();
+        int offset = RowKeyUtil.SPLIT_KEY_LENGTH;
+        return Bytes.compareTo(l, offset, l.length - offset, r, offset, r.length - offset);
+    }
+
+    private static String[] decodeToken(String pageToken) {
+        String[] cursors = new String[RowKeyUtil.SPLIT_COUNT];
+        if (pageToken == null || pageToken.isEmpty()) {
+            return cursors;
+        }
+        String[] parts = pageToken.split("\\" + TOKEN_SEPARATOR, -1);
+        if (parts.length != RowKeyUtil.SPLIT_COUNT) {
+            throw new IllegalArgumentException("invalid page token: " + pageToken);
+        }
+        System.arraycopy(parts, 0, cursors, 0, parts.length);
+        return cursors;
+    }
+
+    private static String encodeToken(String[] cursors) {
+        StringBuilder token = new StringBuilder();
+        for (int split = 0; split < cursors.length; split++) {
+            if (split > 0) {
+                token.append(TOKEN_SEPARATOR);
+            }
+            if (cursors[split] != null) {
+                token.append(cursors[split]);
+            }
+        }
+        return token.toString();
+    }
+}
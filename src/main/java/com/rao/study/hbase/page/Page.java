@@ -0,0 +1,33 @@
+package com.rao.study.hbase.page;
+
+import org.apache.hadoop.hbase.client.Result;
+
+import java.util.List;
+
+/**
+ * 一页查询结果
+ */
+public class Page {
+
+    private final List<Result> results;
+
+    //查询下一页时传入,为null表示没有下一页
+    private final String nextPageToken;
+
+    public Page(List<Result> results, String nextPageToken) {
+        this.results = results;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.rao.study.hbase.scan;
+
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AdaptiveScanner的扫描指标,在ScanMetrics的基础上增加当前选用的扫描参数
+ */
+public class AdaptiveScanMetrics extends ScanMetrics {
+
+    public static final String CACHING_METRIC_NAME = "ADAPTIVE_CACHING";
+    public static final String BATCH_METRIC_NAME = "ADAPTIVE_BATCH";
+    public static final String MAX_RESULT_SIZE_METRIC_NAME = "ADAPTIVE_MAX_RESULT_SIZE";
+    public static final String ALLOW_PARTIAL_RESULTS_METRIC_NAME = "ADAPTIVE_ALLOW_PARTIAL_RESULTS";
+    //调整参数后重新打开scanner的次数
+    public static final String RETUNES_METRIC_NAME = "ADAPTIVE_RETUNES";
+    public static final String BYTES_PER_ROW_METRIC_NAME = "ADAPTIVE_BYTES_PER_ROW";
+
+    public final AtomicLong caching = createCounter(CACHING_METRIC_NAME);
+    public final AtomicLong batch = createCounter(BATCH_METRIC_NAME);
+    public final AtomicLong maxResultSize = createCounter(MAX_RESULT_SIZE_METRIC_NAME);
+    public final AtomicLong allowPartialResults = createCounter(ALLOW_PARTIAL_RESULTS_METRIC_NAME);
+    public final AtomicLong retunes = createCounter(RETUNES_METRIC_NAME);
+    public final AtomicLong bytesPerRow = createCounter(BYTES_PER_ROW_METRIC_NAME);
+
+    /**
+     * 累加底层scanner的指标
+     */
+    void add(ScanMetrics other) {
+        for (Map.Entry<String, Long> entry : other.getMetricsMap().entrySet()) {
+            addToCounter(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.rao.study.hbase.scan;
+
+import org.apache.hadoop.hbase.client.AbstractClientScanner;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+
+/**
+ * 根据实际的行大小自动调整caching、batch、maxResultSize的scanner
+ *
+ * 默认的caching对很窄的行需要很多次RPC,对很宽的行一次返回的数据又可能撑爆客户端内存
+ * 这里一边扫描一边统计平均每行的字节数和cell数,让每次RPC返回的数据量接近targetResponseBytes:
+ * 窄行: 增大caching,一次RPC返回多行
+ * 宽行(cell多): 设置batch,一次只返回一行中的部分cell
+ * 单个cell就超过目标大小: 设置allowPartialResults,由maxResultSize限制每次返回的大小
+ *
+ * 参数变化较大时在行的边界处关闭scanner,以新的参数从下一行重新打开,所以不支持PageFilter这类有状态的过滤器
+ * 过滤器需要整行判断(hasFilterRow,如SingleColumnValueFilter)时Scan不能设置batch,宽行只用maxResultSize和allowPartialResults限制
+ * 当前选用的参数记录在getScanMetrics()返回的AdaptiveScanMetrics中
+ */
+public class AdaptiveScanner extends AbstractClientScanner {
+
+    public static final long DEFAULT_TARGET_RESPONSE_BYTES = 2 * 1024 * 1024;
+
+    private static final int MIN_CACHING = 1;
+    private static final int MAX_CACHING = 10000;
+    //参数变化超过该比例时才重新打开scanner
+    private static final double RETUNE_THRESHOLD = 0.5;
+    //平均值中新的一行所占的权重
+    private static final double SMOOTHING = 0.2;
+
+    private final Table table;
+    private final Scan scan;
+    private final long targetResponseBytes;
+    private final AdaptiveScanMetrics metrics = new AdaptiveScanMetrics();
+
+    private ResultScanner scanner;
+    //当前scanner打开后读到的Result数
+    private long resultsSinceOpen;
+
+    //当前行的rowKey以及已经读到的字节数和cell数(开启batch或partial时一行会分成多个Result)
+    private byte[] currentRow;
+    private long currentRowBytes;
+    private long currentRowCells;
+
+    private double bytesPerRow = -1;
+    private double cellsPerRow = -1;
+
+    private boolean closed;
+
+    public AdaptiveScanner(Table table, Scan scan) throws IOException {
+        this(table, scan, DEFAULT_TARGET_RESPONSE_BYTES);
+    }
+
+    /**
+     * @param targetResponseBytes 每次RPC期望返回的字节数
+     */
+    public AdaptiveScanner(Table table, Scan scan, long targetResponseBytes) throws IOException {
+        this.table = table;
+        this.scan = new Scan(scan);
+        this.targetResponseBytes = targetResponseBytes;
+        this.scan.setMaxResultSize(targetResponseBytes);
+        if (this.scan.getCaching() <= 0) {
+            this.scan.setCaching(100);
+        }
+        open(this.scan.getStartRow());
+    }
+
+    @Override
+    public Result next() throws IOException {
+        if (closed) {
+            return null;
+        }
+        while (true) {
+            Result result = scanner.next();
+            if (result == null) {
+                finishRow();
+                return null;
+            }
+            resultsSinceOpen++;
+
+            if (currentRow != null && !Bytes.equals(currentRow, result.getRow())) {
+                finishRow();
+                //上一行已经完整读完,可以在这里调整参数,从这一行重新开始扫描
+                if (resultsSinceOpen > 2L * scan.getCaching() && retune()) {
+                    open(result.getRow());
+                    continue;
+                }
+            }
+            if (currentRow == null) {
+                currentRow = result.getRow();
+            }
+            currentRowBytes += Result.getTotalSizeOfCells(result);
+            currentRowCells += result.size();
+            return result;
+        }
+    }
+
+    /**
+     * 一行读完,更新平均行大小
+     */
+    private void finishRow() {
+        if (currentRow == null) {
+            return;
+        }
+        if (bytesPerRow < 0) {
+            bytesPerRow = currentRowBytes;
+            cellsPerRow = currentRowCells;
+        } else {
+            bytesPerRow = bytesPerRow * (1 - SMOOTHING) + currentRowBytes * SMOOTHING;
+            cellsPerRow = cellsPerRow * (1 - SMOOTHING) + currentRowCells * SMOOTHING;
+        }
+        metrics.bytesPerRow.set((long) bytesPerRow);
+        currentRow = null;
+        currentRowBytes = 0;
+        currentRowCells = 0;
+    }
+
+    /**
+     * 按平均行大小计算新的参数
+     * @return 参数是否变化较大,需要重新打开scanner
+     */
+    private boolean retune() {
+        if (bytesPerRow <= 0) {
+            return false;
+        }
+        int caching;
+        int batch = 0;
+        boolean allowPartialResults = false;
+        double bytesPerCell = bytesPerRow / Math.max(1, cellsPerRow);
+        if (bytesPerRow <= targetResponseBytes) {
+            //窄行,一次RPC返回多行
+            caching = (int) Math.max(MIN_CACHING, Math.min(MAX_CACHING, targetResponseBytes / bytesPerRow));
+        } else if (bytesPerCell <= targetResponseBytes && !hasFilterRow()) {
+            //宽行,一次只返回一行中能放进目标大小的cell
+            batch = (int) Math.max(1, targetResponseBytes / bytesPerCell);
+            caching = MIN_CACHING;
+        } else {
+            //单个cell就超过目标大小,或者过滤器不允许batch,由maxResultSize切分
+            caching = MIN_CACHING;
+            allowPartialResults = true;
+        }
+
+        boolean changed = batch != scan.getBatch()
+                || allowPartialResults != scan.getAllowPartialResults()
+                || Math.abs(caching - scan.getCaching()) > scan.getCaching() * RETUNE_THRESHOLD;
+        if (changed) {
+            scan.setCaching(caching);
+            //setBatch对hasFilterRow的过滤器会抛出IncompatibleFilterException,设置为0也一样,只在变化时设置
+            if (batch != scan.getBatch()) {
+                scan.setBatch(batch);
+            }
+            scan.setAllowPartialResults(allowPartialResults);
+        }
+        return changed;
+    }
+
+    private boolean hasFilterRow() {
+        return scan.hasFilter() && scan.getFilter().hasFilterRow();
+    }
+
+    /**
+     * 从startRow(包含)开始以当前参数打开scanner
+     */
+    private void open(byte[] startRow) throws IOException {
+        if (scanner != null) {
+            closeScanner();
+            metrics.retunes.incrementAndGet();
+        }
+        scan.setStartRow(startRow);
+        scanner = table.getScanner(scan);
+        resultsSinceOpen = 0;
+        currentRow = null;
+        currentRowBytes = 0;
+        currentRowCells = 0;
+
+        metrics.caching.set(scan.getCaching());
+        metrics.batch.set(scan.getBatch());
+        metrics.maxResultSize.set(scan.getMaxResultSize());
+        metrics.allowPartialResults.set(scan.getAllowPartialResults() ? 1 : 0);
+    }
+
+    private void closeScanner() {
+        scanner.close();
+        if (scanner instanceof AbstractClientScanner) {
+            AbstractClientScanner clientScanner = (AbstractClientScanner) scanner;
+            if (clientScanner.getScanMetrics() != null) {
+                metrics.add(clientScanner.getScanMetrics());
+            }
+        }
+    }
+
+    @Override
+    public AdaptiveScanMetrics getScanMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeScanner();
+    }
+
+    @Override
+    public boolean renewLease() {
+        return scanner instanceof AbstractClientScanner && ((AbstractClientScanner) scanner).renewLease();
+    }
+}
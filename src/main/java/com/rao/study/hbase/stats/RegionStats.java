@@ -0,0 +1,98 @@
+package com.rao.study.hbase.stats;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个region的统计信息
+ * 抽样统计时,行数、cell数等与TableStats一样按抽样比例放大,是估算值
+ */
+public class RegionStats {
+
+    //rowKey长度分布的上界,最后一个桶表示大于256字节
+    public static final int[] KEY_SIZE_BOUNDS = {16, 32, 64, 128, 256};
+
+    private final byte[] regionName;
+    private final byte[] startKey;
+    private final double sampleRate;
+    //抽样到的原始数量
+    long rows;
+    long cells;
+    final Map<String, Long> familyBytes = new TreeMap<String, Long>();
+    final long[] keySizeCounts = new long[KEY_SIZE_BOUNDS.length + 1];
+    //来自HRegionServer上报的指标,-1表示没有获取到
+    int storefileSizeMB = -1;
+    int memStoreSizeMB = -1;
+
+    RegionStats(byte[] regionName, byte[] startKey, double sampleRate) {
+        this.regionName = regionName;
+        this.startKey = startKey;
+        this.sampleRate = sampleRate;
+    }
+
+    void addRowKey(int keyLength) {
+        int bucket = 0;
+        while (bucket < KEY_SIZE_BOUNDS.length && keyLength > KEY_SIZE_BOUNDS[bucket]) {
+            bucket++;
+        }
+        keySizeCounts[bucket]++;
+    }
+
+    void addFamilyBytes(String family, long bytes) {
+        Long total = familyBytes.get(family);
+        familyBytes.put(family, total == null ? bytes : total + bytes);
+    }
+
+    public byte[] getRegionName() {
+        return regionName;
+    }
+
+    public byte[] getStartKey() {
+        return startKey;
+    }
+
+    public long getRows() {
+        return scale(rows);
+    }
+
+    public long getCells() {
+        return scale(cells);
+    }
+
+    public Map<String, Long> getFamilyBytes() {
+        Map<String, Long> scaled = new TreeMap<String, Long>();
+        for (Map.Entry<String, Long> entry : familyBytes.entrySet()) {
+            scaled.put(entry.getKey(), scale(entry.getValue()));
+        }
+        return scaled;
+    }
+
+    public long[] getKeySizeCounts() {
+        long[] scaled = new long[keySizeCounts.length];
+        for (int i = 0; i < scaled.length; i++) {
+            scaled[i] = scale(keySizeCounts[i]);
+        }
+        return scaled;
+    }
+
+    public int getStorefileSizeMB() {
+        return storefileSizeMB;
+    }
+
+    public int getMemStoreSizeMB() {
+        return memStoreSizeMB;
+    }
+
+    long scale(long value) {
+        return Math.round(value / sampleRate);
+    }
+
+    @Override
+    public String toString() {
+        return "startKey=" + Bytes.toStringBinary(startKey) + ", rows=" + getRows() + ", cells=" + getCells()
+                + ", familyBytes=" + getFamilyBytes() + ", storefileSizeMB=" + storefileSizeMB
+                + ", memStoreSizeMB=" + memStoreSizeMB;
+    }
+}
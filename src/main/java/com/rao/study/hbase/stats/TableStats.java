@@ -0,0 +1,132 @@
+package com.rao.study.hbase.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 表的统计信息,由各region的统计信息汇总
+ * 抽样统计时,汇总的数值已经按抽样比例放大,是估算值
+ */
+public class TableStats {
+
+    //行数超过平均值的倍数时认为region有倾斜
+    private static final double SKEW_FACTOR = 2.0;
+
+    private final String tableName;
+    private final double sampleRate;
+    private final List<RegionStats> regions;
+    private final long elapsedMillis;
+
+    TableStats(String tableName, double sampleRate, List<RegionStats> regions, long elapsedMillis) {
+        this.tableName = tableName;
+        this.sampleRate = sampleRate;
+        this.regions = regions;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<RegionStats> getRegions() {
+        return regions;
+    }
+
+    public boolean isApproximate() {
+        return sampleRate < 1.0;
+    }
+
+    public long getRows() {
+        long rows = 0;
+        for (RegionStats region : regions) {
+            rows += region.rows;
+        }
+        return scale(rows);
+    }
+
+    public long getCells() {
+        long cells = 0;
+        for (RegionStats region : regions) {
+            cells += region.cells;
+        }
+        return scale(cells);
+    }
+
+    public Map<String, Long> getFamilyBytes() {
+        Map<String, Long> familyBytes = new TreeMap<String, Long>();
+        for (RegionStats region : regions) {
+            for (Map.Entry<String, Long> entry : region.familyBytes.entrySet()) {
+                Long total = familyBytes.get(entry.getKey());
+                familyBytes.put(entry.getKey(), (total == null ? 0 : total) + scale(entry.getValue()));
+            }
+        }
+        return familyBytes;
+    }
+
+    public long[] getKeySizeCounts() {
+        long[] counts = new long[RegionStats.KEY_SIZE_BOUNDS.length + 1];
+        for (RegionStats region : regions) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += region.keySizeCounts[i];
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = scale(counts[i]);
+        }
+        return counts;
+    }
+
+    /**
+     * 行数超过平均值SKEW_FACTOR倍的region
+     */
+    public List<RegionStats> getSkewedRegions() {
+        List<RegionStats> skewed = new ArrayList<RegionStats>();
+        if (regions.isEmpty()) {
+            return skewed;
+        }
+        double average = 0;
+        for (RegionStats region : regions) {
+            average += region.rows;
+        }
+        average /= regions.size();
+        for (RegionStats region : regions) {
+            if (region.rows > average * SKEW_FACTOR) {
+                skewed.add(region);
+            }
+        }
+        return skewed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    private long scale(long value) {
+        return Math.round(value / sampleRate);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("table=").append(tableName)
+                .append(isApproximate() ? ", approximate(sampleRate=" + sampleRate + ")" : "")
+                .append(", rows=").append(getRows())
+                .append(", cells=").append(getCells())
+                .append(", familyBytes=").append(getFamilyBytes())
+                .append(", elapsed=").append(elapsedMillis).append("ms\n");
+
+        builder.append("keySize:");
+        long[] keySizeCounts = getKeySizeCounts();
+        for (int i = 0; i < keySizeCounts.length; i++) {
+            builder.append(i < RegionStats.KEY_SIZE_BOUNDS.length
+                    ? " <=" + RegionStats.KEY_SIZE_BOUNDS[i]
+                    : " >" + RegionStats.KEY_SIZE_BOUNDS[RegionStats.KEY_SIZE_BOUNDS.length - 1])
+                    .append("=").append(keySizeCounts[i]);
+        }
+        builder.append("\n");
+
+        List<RegionStats> skewed = getSkewedRegions();
+        for (RegionStats region : regions) {
+            builder.append(skewed.contains(region) ? "[skewed] " : "").append(region).append("\n");
+        }
+        return builder.toString();
+    }
+}
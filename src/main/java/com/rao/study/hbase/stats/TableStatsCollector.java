@@ -0,0 +1,169 @@
+package com.rao.study.hbase.stats;
+
+import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+
+/**
+ * 统计表的行数、cell数、每个列蔟的字节数、rowKey长度分布以及每个region的行数
+ *
+ * 每个region一个线程并行扫描,扫描时不返回value:
+ * countOnly时每行只返回第一个cell的key(FirstKeyOnlyFilter + KeyOnlyFilter),只统计行数和rowKey长度;
+ * 否则用KeyOnlyFilter(true)把value替换为value的长度,统计cell数和字节数
+ * sampleRate小于1时用RandomRowFilter抽样,结果按比例放大为估算值
+ * 同时从HRegionServer上报的RegionLoad中获取每个region的storefile和memstore大小
+ */
+public class TableStatsCollector {
+
+    private final Connection connection;
+    private final TableName tableName;
+
+    private int threads = 8;
+    private double sampleRate = 1.0;
+    private boolean countOnly = false;
+
+    public TableStatsCollector(Connection connection, TableName tableName) {
+        this.connection = connection;
+        this.tableName = tableName;
+    }
+
+    public TableStatsCollector setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param sampleRate 抽样比例(0,1],1表示全部统计
+     */
+    public TableStatsCollector setSampleRate(double sampleRate) {
+        if (sampleRate <= 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be in (0, 1]");
+        }
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * 只统计行数和rowKey长度,扫描最快
+     */
+    public TableStatsCollector setCountOnly(boolean countOnly) {
+        this.countOnly = countOnly;
+        return this;
+    }
+
+    public TableStats collect() throws IOException {
+        long start = System.currentTimeMillis();
+
+        List<HRegionLocation> locations;
+        RegionLocator locator = connection.getRegionLocator(tableName);
+        try {
+            locations = locator.getAllRegionLocations();
+        } finally {
+            locator.close();
+        }
+
+        List<RegionStats> regions = new ArrayList<RegionStats>(locations.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, locations.size())));
+        try {
+            List<Future<RegionStats>> futures = new ArrayList<Future<RegionStats>>();
+            for (final HRegionLocation location : locations) {
+                futures.add(executor.submit(new Callable<RegionStats>() {
+                    public RegionStats call() throws Exception {
+                        return scanRegion(location.getRegionInfo());
+                    }
+                }));
+            }
+            for (Future<RegionStats> future : futures) {
+                regions.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("collect stats interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("collect stats failed on " + tableName, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        addRegionLoads(regions);
+        return new TableStats(tableName.getNameAsString(), sampleRate, regions, System.currentTimeMillis() - start);
+    }
+
+    private RegionStats scanRegion(HRegionInfo regionInfo) throws IOException {
+        RegionStats stats = new RegionStats(regionInfo.getRegionName(), regionInfo.getStartKey(), sampleRate);
+
+        Scan scan = new Scan(regionInfo.getStartKey(), regionInfo.getEndKey());
+        scan.setCaching(countOnly ? 10000 : 1000);
+        //统计用的扫描不需要进入BlockCache
+        scan.setCacheBlocks(false);
+        FilterList filters = new FilterList();
+        if (sampleRate < 1.0) {
+            filters.addFilter(new RandomRowFilter((float) sampleRate));
+        }
+        if (countOnly) {
+            filters.addFilter(new FirstKeyOnlyFilter());
+            filters.addFilter(new KeyOnlyFilter());
+        } else {
+            filters.addFilter(new KeyOnlyFilter(true));
+        }
+        scan.setFilter(filters);
+
+        Table table = connection.getTable(tableName);
+        ResultScanner scanner = table.getScanner(scan);
+        try {
+            for (Result result : scanner) {
+                stats.rows++;
+                stats.addRowKey(result.getRow().length);
+                if (countOnly) {
+                    continue;
+                }
+                for (Cell cell : result.rawCells()) {
+                    stats.cells++;
+                    //KeyOnlyFilter(true)时value是原value的长度
+                    int valueLength = Bytes.toInt(cell.getValueArray(), cell.getValueOffset());
+                    stats.addFamilyBytes(Bytes.toString(CellUtil.cloneFamily(cell)),
+                            cell.getRowLength() + cell.getFamilyLength() + cell.getQualifierLength()
+                                    + Bytes.SIZEOF_LONG + valueLength);
+                }
+            }
+        } finally {
+            scanner.close();
+            table.close();
+        }
+        return stats;
+    }
+
+    /**
+     * 从集群状态中获取每个region的storefile和memstore大小
+     */
+    private void addRegionLoads(List<RegionStats> regions) throws IOException {
+        Map<byte[], RegionLoad> loads = new TreeMap<byte[], RegionLoad>(Bytes.BYTES_COMPARATOR);
+        Admin admin = connection.getAdmin();
+        try {
+            ClusterStatus status = admin.getClusterStatus();
+            for (ServerName server : status.getServers()) {
+                ServerLoad serverLoad = status.getLoad(server);
+                if (serverLoad != null) {
+                    loads.putAll(serverLoad.getRegionsLoad());
+                }
+            }
+        } finally {
+            admin.close();
+        }
+        for (RegionStats region : regions) {
+            RegionLoad load = loads.get(region.getRegionName());
+            if (load != null) {
+                region.storefileSizeMB = load.getStorefileSizeMB();
+                region.memStoreSizeMB = load.getMemStoreSizeMB();
+            }
+        }
+    }
+}
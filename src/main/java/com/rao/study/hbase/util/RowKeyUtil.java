@@ -0,0 +1,37 @@
+package com.rao.study.hbase.util;
+
+/**
+ * person表的rowKey规则
+ * rowKey = 分区号 + 手机号_年-月-日 时:分:秒, 例如 001_13824411467_2020-04-22 12:12:12
+ * 分区号按 手机号_年-月-日 进行hash 求余得出,与建表时的预分区键 000| 001| 002| 对应
+ */
+public class RowKeyUtil {
+
+    //分区数
+    public static final int SPLIT_COUNT = 3;
+
+    //分区号的长度,如 "001_"
+    public static final int SPLIT_KEY_LENGTH = 4;
+
+    /**
+     * 按手机号和年-月-日计算分区号
+     * @param phone 手机号
+     * @param date 年-月-日
+     * @return 如 "001_"
+     */
+    public static String getSplitKey(String phone, String date) {
+        return getSplitKey(Math.abs((phone + "_" + date).hashCode() % SPLIT_COUNT));
+    }
+
+    public static String getSplitKey(int split) {
+        return "00" + split + "_";
+    }
+
+    /**
+     * @param phone 手机号
+     * @param dateTime 年-月-日 时:分:秒
+     */
+    public static String buildRowKey(String phone, String dateTime) {
+        return getSplitKey(phone, dateTime.substring(0, 10)) + phone + "_" + dateTime;
+    }
+}
@@ -0,0 +1,119 @@
+package com.rao.study.hbase.warmup;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 连接预热
+ * 新建的连接没有缓存region的位置,每个region第一次读写时都要先查询hbase:meta,所以应用刚启动时的请求很慢
+ * 这里在创建连接后,先把指定表所有region的位置缓存起来,并与每个HRegionServer建立连接,把这部分耗时放在启动阶段
+ */
+public class ConnectionWarmup {
+
+    /**
+     * 预热结果
+     */
+    public static class Report {
+        private int tables;
+        private int regions;
+        private final Set<ServerName> servers = new HashSet<ServerName>();
+        private long elapsedMillis;
+
+        public int getTables() {
+            return tables;
+        }
+
+        public int getRegions() {
+            return regions;
+        }
+
+        public int getServers() {
+            return servers.size();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "warmup tables=" + tables + ", regions=" + regions + ", servers=" + servers.size()
+                    + ", elapsed=" + elapsedMillis + "ms";
+        }
+    }
+
+    /**
+     * 创建连接并预热
+     * @param report 不为null时写入预热结果
+     */
+    public static Connection createConnection(Configuration configuration, boolean fetchDescriptors, Report report,
+                                              TableName... tableNames) throws IOException {
+        Connection connection = ConnectionFactory.createConnection(configuration);
+        try {
+            warmup(connection, fetchDescriptors, report == null ? new Report() : report, tableNames);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * @param fetchDescriptors 是否同时获取表描述信息
+     */
+    public static Report warmup(Connection connection, boolean fetchDescriptors, TableName... tableNames) throws IOException {
+        Report report = new Report();
+        warmup(connection, fetchDescriptors, report, tableNames);
+        return report;
+    }
+
+    private static void warmup(Connection connection, boolean fetchDescriptors, Report report,
+                               TableName... tableNames) throws IOException {
+        long start = System.currentTimeMillis();
+        for (TableName tableName : tableNames) {
+            warmupTable(connection, tableName, fetchDescriptors, report);
+            report.tables++;
+        }
+        report.elapsedMillis = System.currentTimeMillis() - start;
+    }
+
+    private static void warmupTable(Connection connection, TableName tableName, boolean fetchDescriptors,
+                                    Report report) throws IOException {
+        Table table = connection.getTable(tableName);
+        RegionLocator locator = connection.getRegionLocator(tableName);
+        try {
+            if (fetchDescriptors) {
+                table.getTableDescriptor();
+            }
+
+            //查询每个region的位置,放入连接的region位置缓存
+            List<HRegionLocation> locations = locator.getAllRegionLocations();
+            Set<ServerName> tableServers = new HashSet<ServerName>();
+            for (HRegionLocation location : locations) {
+                locator.getRegionLocation(location.getRegionInfo().getStartKey());
+                report.regions++;
+
+                //对每个HRegionServer发送一次只检查是否存在的Get,建立到该HRegionServer的连接
+                if (tableServers.add(location.getServerName())) {
+                    byte[] startKey = location.getRegionInfo().getStartKey();
+                    //第一个region的startKey为空,Get的rowKey不能为空
+                    Get get = new Get(startKey.length == 0 ? new byte[]{0} : startKey);
+                    get.setCheckExistenceOnly(true);
+                    table.get(get);
+                }
+            }
+            report.servers.addAll(tableServers);
+        } finally {
+            locator.close();
+            table.close();
+        }
+    }
+}
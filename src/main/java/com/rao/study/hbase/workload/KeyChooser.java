@@ -0,0 +1,104 @@
+package com.rao.study.hbase.workload;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按指定的分布选择要访问的数据编号
+ * uniform 均匀分布, zipfian 少量热点数据被频繁访问, latest 最近插入的数据被频繁访问
+ */
+public abstract class KeyChooser {
+
+    public abstract long nextIndex();
+
+    /**
+     * @param distribution uniform / zipfian / latest
+     * @param recordCount 初始数据条数
+     * @param insertCount 当前已有的数据条数,插入新数据时递增
+     */
+    public static KeyChooser create(String distribution, long recordCount, AtomicLong insertCount) {
+        if ("uniform".equals(distribution)) {
+            return new Uniform(insertCount);
+        } else if ("zipfian".equals(distribution)) {
+            return new Zipfian(recordCount);
+        } else if ("latest".equals(distribution)) {
+            return new Latest(recordCount, insertCount);
+        }
+        throw new IllegalArgumentException("unknown distribution: " + distribution);
+    }
+
+    static class Uniform extends KeyChooser {
+        private final AtomicLong insertCount;
+
+        Uniform(AtomicLong insertCount) {
+            this.insertCount = insertCount;
+        }
+
+        public long nextIndex() {
+            return nextLong(ThreadLocalRandom.current(), insertCount.get());
+        }
+    }
+
+    /**
+     * Zipfian分布,编号越小越热,参考 Gray et al. "Quickly Generating Billion-Record Synthetic Databases"
+     */
+    static class Zipfian extends KeyChooser {
+        private static final double THETA = 0.99;
+
+        private final long items;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipfian(long items) {
+            this.items = items;
+            double zeta2 = zeta(2);
+            this.zetan = zeta(items);
+            this.alpha = 1.0 / (1.0 - THETA);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - THETA)) / (1 - zeta2 / zetan);
+        }
+
+        private static double zeta(long n) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, THETA);
+            }
+            return sum;
+        }
+
+        public long nextIndex() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, THETA)) {
+                return 1;
+            }
+            return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+
+    /**
+     * 以最新插入的数据为热点,越新越热
+     */
+    static class Latest extends KeyChooser {
+        private final Zipfian zipfian;
+        private final AtomicLong insertCount;
+
+        Latest(long recordCount, AtomicLong insertCount) {
+            this.zipfian = new Zipfian(recordCount);
+            this.insertCount = insertCount;
+        }
+
+        public long nextIndex() {
+            long latest = insertCount.get() - 1;
+            return Math.max(0, latest - zipfian.nextIndex());
+        }
+    }
+
+    static long nextLong(Random random, long bound) {
+        return (long) (random.nextDouble() * bound);
+    }
+}
@@ -0,0 +1,88 @@
+package com.rao.study.hbase.workload;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 延迟直方图,单位微秒,可多线程并发记录
+ * 小于128us的按1us一个桶,更大的值按2的幂分段,每段64个桶,误差约1.5%
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 7) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long micros) {
+        counts.incrementAndGet(indexOf(Math.max(0, micros)));
+    }
+
+    /**
+     * 把other中的数据累加到当前直方图
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile 0~100
+     * @return 对应百分位的延迟(微秒)
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, target)) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(BUCKETS - 1);
+    }
+
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return valueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - 6)) & (SUB_BUCKETS - 1));
+        return LINEAR_BUCKETS + (exponent - 7) * SUB_BUCKETS + sub;
+    }
+
+    private static long valueOf(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int offset = index - LINEAR_BUCKETS;
+        int exponent = offset / SUB_BUCKETS + 7;
+        long sub = offset % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - 6);
+    }
+}
@@ -0,0 +1,290 @@
+package com.rao.study.hbase.workload;
+
+import com.rao.study.hbase.util.RowKeyUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 压测工具,按配置的读/写/扫描比例对person表进行压测,定时输出吞吐量和延迟百分位
+ *
+ * rowKey使用person表的分区规则(见RowKeyUtil),第i条数据对应 手机号(i/100) 的第(i%100)条通话记录
+ * 连接的集群由hbase.zookeeper.quorum决定,压测本地的mini cluster时指定为localhost即可, 例如:
+ * hadoop jar study-hbase.jar com.rao.study.hbase.workload.WorkloadDriver -Dhbase.zookeeper.quorum=localhost -Dworkload.load=true
+ */
+public class WorkloadDriver implements Tool {
+
+    public enum Operation {
+        READ, UPDATE, INSERT, SCAN
+    }
+
+    public static final String TABLE = "workload.table";
+    public static final String FAMILY = "workload.family";
+    public static final String RECORD_COUNT = "workload.record.count";
+    public static final String OPERATION_COUNT = "workload.operation.count";
+    public static final String DURATION_SECONDS = "workload.duration.seconds";
+    public static final String THREADS = "workload.threads";
+    //目标吞吐量(次/秒),小于等于0表示不限速
+    public static final String TARGET_OPS = "workload.target.ops";
+    public static final String DISTRIBUTION = "workload.distribution";
+    public static final String READ_PROPORTION = "workload.read.proportion";
+    public static final String UPDATE_PROPORTION = "workload.update.proportion";
+    public static final String INSERT_PROPORTION = "workload.insert.proportion";
+    public static final String SCAN_PROPORTION = "workload.scan.proportion";
+    public static final String SCAN_LENGTH = "workload.scan.length";
+    public static final String VALUE_SIZE = "workload.value.size";
+    public static final String REPORT_INTERVAL_SECONDS = "workload.report.interval.seconds";
+    //压测前是否先写入record.count条数据
+    public static final String LOAD = "workload.load";
+
+    private static final int CALLS_PER_PHONE = 100;
+    private static final long BASE_PHONE = 13800000000L;
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2020, 4, 22, 0, 0, 0);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private Configuration configuration;
+
+    //压测中每次操作都要用到的配置,只在启动时读取一次,Configuration的读取是同步的
+    private int scanLength;
+    private int valueSize;
+
+    private final Map<Operation, LatencyHistogram> totalLatency = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+    private final Map<Operation, AtomicReference<LatencyHistogram>> intervalLatency =
+            new EnumMap<Operation, AtomicReference<LatencyHistogram>>(Operation.class);
+    private final AtomicLong errors = new AtomicLong();
+
+    public int run(String[] args) throws Exception {
+        TableName tableName = TableName.valueOf(configuration.get(TABLE, "person"));
+        byte[] family = Bytes.toBytes(configuration.get(FAMILY, "info"));
+        long recordCount = configuration.getLong(RECORD_COUNT, 100000);
+        int threads = configuration.getInt(THREADS, 8);
+        scanLength = configuration.getInt(SCAN_LENGTH, 20);
+        valueSize = configuration.getInt(VALUE_SIZE, 100);
+
+        for (Operation operation : Operation.values()) {
+            totalLatency.put(operation, new LatencyHistogram());
+            intervalLatency.put(operation, new AtomicReference<LatencyHistogram>(new LatencyHistogram()));
+        }
+
+        Connection connection = ConnectionFactory.createConnection(configuration);
+        try {
+            if (configuration.getBoolean(LOAD, false)) {
+                load(connection, tableName, family, recordCount);
+            }
+            runWorkload(connection, tableName, family, recordCount, threads);
+        } finally {
+            connection.close();
+        }
+        return errors.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * 写入初始数据
+     */
+    private void load(Connection connection, TableName tableName, byte[] family, long recordCount) throws IOException {
+        long start = System.currentTimeMillis();
+        BufferedMutator mutator = connection.getBufferedMutator(tableName);
+        try {
+            for (long i = 0; i < recordCount; i++) {
+                mutator.mutate(buildPut(i, family));
+            }
+        } finally {
+            mutator.close();
+        }
+        System.out.println("loaded " + recordCount + " records in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void runWorkload(final Connection connection, final TableName tableName, final byte[] family,
+                             long recordCount, int threads) throws Exception {
+        final long operationCount = configuration.getLong(OPERATION_COUNT, 0);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(configuration.getLong(DURATION_SECONDS, 60));
+        long targetOps = configuration.getLong(TARGET_OPS, 0);
+        //每个线程两次操作之间的间隔
+        final long intervalNanos = targetOps > 0 ? TimeUnit.SECONDS.toNanos(1) * threads / targetOps : 0;
+
+        final double[] proportions = {
+                configuration.getDouble(READ_PROPORTION, 0.5),
+                configuration.getDouble(UPDATE_PROPORTION, 0.3),
+                configuration.getDouble(INSERT_PROPORTION, 0.1),
+                configuration.getDouble(SCAN_PROPORTION, 0.1)
+        };
+        final AtomicLong insertCount = new AtomicLong(recordCount);
+        final KeyChooser keyChooser = KeyChooser.create(configuration.get(DISTRIBUTION, "zipfian"), recordCount, insertCount);
+        final AtomicLong issued = new AtomicLong();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long reportInterval = configuration.getLong(REPORT_INTERVAL_SECONDS, 10);
+        final long startNanos = System.nanoTime();
+        reporter.scheduleAtFixedRate(new Runnable() {
+            private long lastNanos = startNanos;
+
+            public void run() {
+                long now = System.nanoTime();
+                Map<Operation, LatencyHistogram> interval = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+                for (Operation operation : Operation.values()) {
+                    interval.put(operation, intervalLatency.get(operation).getAndSet(new LatencyHistogram()));
+                }
+                report("[" + TimeUnit.NANOSECONDS.toSeconds(now - startNanos) + "s]", interval, now - lastNanos);
+                lastNanos = now;
+            }
+        }, reportInterval, reportInterval, TimeUnit.SECONDS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Table table = connection.getTable(tableName);
+                    try {
+                        long next = System.nanoTime();
+                        while (System.nanoTime() < deadline
+                                && (operationCount <= 0 || issued.incrementAndGet() <= operationCount)) {
+                            long begin;
+                            if (intervalNanos > 0) {
+                                long wait = next - System.nanoTime();
+                                if (wait > 0) {
+                                    TimeUnit.NANOSECONDS.sleep(wait);
+                                }
+                                //限速时从计划的开始时间算起,前面的操作变慢导致的排队时间也计入延迟
+                                begin = next;
+                                next += intervalNanos;
+                            } else {
+                                begin = System.nanoTime();
+                            }
+                            Operation operation = chooseOperation(proportions);
+                            try {
+                                execute(table, family, operation, keyChooser, insertCount);
+                            } catch (IOException e) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin);
+                            totalLatency.get(operation).record(micros);
+                            intervalLatency.get(operation).get().record(micros);
+                        }
+                    } finally {
+                        table.close();
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            reporter.shutdownNow();
+        }
+        report("[total]", totalLatency, System.nanoTime() - startNanos);
+        System.out.println("errors=" + errors.get());
+    }
+
+    private static Operation chooseOperation(double[] proportions) {
+        double total = 0;
+        for (double proportion : proportions) {
+            total += proportion;
+        }
+        double r = ThreadLocalRandom.current().nextDouble() * total;
+        for (int i = 0; i < proportions.length; i++) {
+            r -= proportions[i];
+            if (r < 0) {
+                return Operation.values()[i];
+            }
+        }
+        return Operation.READ;
+    }
+
+    private void execute(Table table, byte[] family, Operation operation, KeyChooser keyChooser,
+                         AtomicLong insertCount) throws IOException {
+        switch (operation) {
+            case READ:
+                table.get(new Get(buildRowKey(keyChooser.nextIndex())));
+                break;
+            case UPDATE:
+                table.put(buildPut(keyChooser.nextIndex(), family));
+                break;
+            case INSERT:
+                table.put(buildPut(insertCount.getAndIncrement(), family));
+                break;
+            case SCAN:
+                Scan scan = new Scan(buildRowKey(keyChooser.nextIndex()));
+                scan.setCaching(scanLength);
+                ResultScanner scanner = table.getScanner(scan);
+                try {
+                    scanner.next(scanLength);
+                } finally {
+                    scanner.close();
+                }
+                break;
+        }
+    }
+
+    private Put buildPut(long index, byte[] family) {
+        byte[] value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        Put put = new Put(buildRowKey(index));
+        put.addColumn(family, Bytes.toBytes("name"), Bytes.toBytes("user" + index / CALLS_PER_PHONE));
+        put.addColumn(family, Bytes.toBytes("count"), value);
+        return put;
+    }
+
+    /**
+     * 第index条数据对应的rowKey,同一个手机号的通话记录每37分钟一条,会分散到不同日期的分区中
+     */
+    static byte[] buildRowKey(long index) {
+        String phone = String.valueOf(BASE_PHONE + index / CALLS_PER_PHONE);
+        String dateTime = BASE_TIME.plusMinutes((index % CALLS_PER_PHONE) * 37).format(TIME_FORMAT);
+        return Bytes.toBytes(RowKeyUtil.buildRowKey(phone, dateTime));
+    }
+
+    private static void report(String label, Map<Operation, LatencyHistogram> latency, long elapsedNanos) {
+        double seconds = Math.max(1, elapsedNanos) / 1e9;
+        long total = 0;
+        StringBuilder detail = new StringBuilder();
+        for (Map.Entry<Operation, LatencyHistogram> entry : latency.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            total += count;
+            if (count == 0) {
+                continue;
+            }
+            detail.append(String.format(" %s[count=%d, p50=%dus, p95=%dus, p99=%dus, max=%dus]",
+                    entry.getKey(), count, histogram.getPercentile(50), histogram.getPercentile(95),
+                    histogram.getPercentile(99), histogram.getMax()));
+        }
+        System.out.println(String.format("%s ops/s=%.1f%s", label, total / seconds, detail));
+    }
+
+    public void setConf(Configuration conf) {
+        configuration = conf;
+    }
+
+    public Configuration getConf() {
+        return configuration;
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(ToolRunner.run(HBaseConfiguration.create(), new WorkloadDriver(), args));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}